@@ -0,0 +1,130 @@
+package com.connecterra.helpers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers which event ids have been applied so redelivered events can be
+ * skipped. Ids up to the watermark are all applied. Ids applied out of order
+ * are kept above it as runs of consecutive ids, so storage grows with the
+ * number of gaps rather than the number of ids. An id is only ever reported
+ * as applied once it has really been added.
+ * <p>
+ * While ids arrive in order, {@link #add(long)} is constant time; otherwise it
+ * is logarithmic in the number of runs.
+ */
+public class AppliedEventIds {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private long watermark;
+    // run start -> { run end }, runs are disjoint, non-adjacent and above watermark + 1
+    private final TreeMap<Long, long[]> runs = new TreeMap<>();
+
+    public AppliedEventIds() {
+	this(-1);
+    }
+
+    /**
+     * Creates a tracker that treats every id up to {@code watermark} as
+     * applied, e.g. the last id covered by a persisted tree state.
+     */
+    public AppliedEventIds(long watermark) {
+	if (watermark < -1) {
+	    throw new IllegalArgumentException("watermark is below -1: " + watermark);
+	}
+	this.watermark = watermark;
+    }
+
+    public long getWatermark() {
+	return watermark;
+    }
+
+    /**
+     * Returns the number of runs of ids applied above the watermark.
+     */
+    public int runCount() {
+	return runs.size();
+    }
+
+    public boolean contains(long id) {
+	if (id <= watermark) {
+	    return true;
+	}
+	Map.Entry<Long, long[]> run = runs.floorEntry(id);
+	return run != null && run.getValue()[0] >= id;
+    }
+
+    /**
+     * Marks {@code id} as applied. Returns {@code false} if it already was.
+     */
+    public boolean add(long id) {
+	if (id < 0) {
+	    throw new IllegalArgumentException("event id is negative: " + id);
+	}
+	if (id <= watermark) {
+	    return false;
+	}
+	if (id == watermark + 1) {
+	    watermark = id;
+	    if (!runs.isEmpty() && runs.firstKey() == watermark + 1) {
+		watermark = runs.pollFirstEntry().getValue()[0];
+	    }
+	    return true;
+	}
+	Map.Entry<Long, long[]> left = runs.floorEntry(id);
+	if (left != null && left.getValue()[0] >= id) {
+	    return false;
+	}
+	boolean joinsLeft = left != null && left.getValue()[0] == id - 1;
+	long[] right = runs.get(id + 1);
+	if (joinsLeft && right != null) {
+	    left.getValue()[0] = right[0];
+	    runs.remove(id + 1);
+	} else if (joinsLeft) {
+	    left.getValue()[0] = id;
+	} else if (right != null) {
+	    runs.remove(id + 1);
+	    runs.put(id, right);
+	} else {
+	    runs.put(id, new long[] { id });
+	}
+	return true;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+	DataOutputStream data = new DataOutputStream(out);
+	data.writeInt(FORMAT_VERSION);
+	data.writeLong(watermark);
+	data.writeInt(runs.size());
+	for (Map.Entry<Long, long[]> run : runs.entrySet()) {
+	    data.writeLong(run.getKey());
+	    data.writeLong(run.getValue()[0]);
+	}
+	data.flush();
+    }
+
+    public static AppliedEventIds readFrom(InputStream in) throws IOException {
+	DataInputStream data = new DataInputStream(in);
+	int version = data.readInt();
+	if (version != FORMAT_VERSION) {
+	    throw new IOException("unsupported applied event id format: " + version);
+	}
+	AppliedEventIds ids = new AppliedEventIds(data.readLong());
+	for (int i = data.readInt(); i > 0; i--) {
+	    long start = data.readLong();
+	    long end = data.readLong();
+	    if (start <= ids.watermark + 1 || end < start) {
+		throw new IOException("corrupt applied event id run: " + start + ".." + end);
+	    }
+	    ids.runs.put(start, new long[] { end });
+	}
+	return ids;
+    }
+
+}
@@ -2,7 +2,7 @@ package com.connecterra.helpers;
 
 public class Interval implements Comparable<Interval> {
 
-    private static final int MERGE_DISTANCE = 7;
+    static final int MERGE_DISTANCE = 7;
 
     int start;
     int end;
@@ -54,8 +54,8 @@ public class Interval implements Comparable<Interval> {
 	if (equals(o))
 	    return 0;
 	if (start != o.start)
-	    return (start - o.start);
-	return (end - o.end);
+	    return Integer.compare(start, o.start);
+	return Integer.compare(end, o.end);
     }
 
     @Override
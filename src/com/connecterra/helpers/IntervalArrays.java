@@ -0,0 +1,94 @@
+package com.connecterra.helpers;
+
+/**
+ * Merge and split kernels over intervals stored as parallel {@code int[]}
+ * start and end arrays, used when {@link IntervalTree} rebuilds its whole
+ * disjoint view. They produce the same segments as the boxed code paths
+ * without touching an object per interval. Both are scalar loops; the target
+ * is JDK 8, so the Vector API is not available.
+ */
+public class IntervalArrays {
+
+    private IntervalArrays() {
+
+    }
+
+    /**
+     * Merges {@code n} intervals sorted by start, joining every interval that
+     * starts within the merge distance of the running segment. Segment
+     * boundaries are picked with selects instead of branches. Writes the
+     * segments to {@code outStarts}/{@code outEnds}, which may alias the inputs,
+     * and returns how many were written.
+     */
+    public static int merge(int[] starts, int[] ends, int n, int[] outStarts, int[] outEnds) {
+	int count = 0;
+	long reach = Long.MIN_VALUE;
+	int segmentStart = 0;
+	int segmentEnd = 0;
+	for (int i = 0; i < n; i++) {
+	    int start = starts[i];
+	    int end = ends[i];
+	    boolean open = start > reach;
+	    count += open ? 1 : 0;
+	    segmentStart = open ? start : segmentStart;
+	    segmentEnd = open ? end : Math.max(segmentEnd, end);
+	    reach = (long) segmentEnd + Interval.MERGE_DISTANCE;
+	    // slot count - 1 never runs ahead of i, so the outputs may alias the inputs
+	    outStarts[count - 1] = segmentStart;
+	    outEnds[count - 1] = segmentEnd;
+	}
+	return count;
+    }
+
+    /**
+     * Removes sorted, pairwise disjoint blocks from {@code n} sorted disjoint
+     * segments the way {@link IntervalTree#delete(Interval)} does: the pieces
+     * left over keep the boundary points of the removed block. This is a plain
+     * linear merge of the two sorted inputs with ordinary branches, unlike
+     * {@link #merge}. The output arrays need room for {@code n + m} segments and
+     * must not alias the inputs.
+     */
+    public static int subtract(int[] starts, int[] ends, int n, int[] blockStarts, int[] blockEnds, int m,
+	    int[] outStarts, int[] outEnds) {
+	return subtract(starts, ends, 0, n, blockStarts, blockEnds, 0, m, outStarts, outEnds);
+    }
+
+    /**
+     * Same as {@link #subtract(int[], int[], int, int[], int[], int, int[], int[])}
+     * for the segments in {@code [from, to)} and the blocks in
+     * {@code [blockFrom, blockTo)}, so callers can split one subtraction into
+     * chunks. The blocks must include every block that intersects a segment of
+     * the range. Writes from index 0 of the outputs, which need room for
+     * {@code (to - from) + (blockTo - blockFrom)} segments.
+     */
+    public static int subtract(int[] starts, int[] ends, int from, int to, int[] blockStarts, int[] blockEnds,
+	    int blockFrom, int blockTo, int[] outStarts, int[] outEnds) {
+	int count = 0;
+	int b = blockFrom;
+	int m = blockTo;
+	for (int i = from; i < to; i++) {
+	    int start = starts[i];
+	    int end = ends[i];
+	    while (b < m && blockEnds[b] <= start) {
+		b++;
+	    }
+	    boolean covered = false;
+	    for (int j = b; j < m && blockStarts[j] < end && !covered; j++) {
+		if (start < blockStarts[j]) {
+		    outStarts[count] = start;
+		    outEnds[count] = blockStarts[j];
+		    count++;
+		}
+		start = blockEnds[j];
+		covered = start >= end;
+	    }
+	    if (!covered) {
+		outStarts[count] = start;
+		outEnds[count] = end;
+		count++;
+	    }
+	}
+	return count;
+    }
+
+}
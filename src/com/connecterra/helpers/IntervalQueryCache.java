@@ -0,0 +1,304 @@
+package com.connecterra.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Bounded LRU cache of range, point and coverage queries over the disjoint view
+ * of an {@link IntervalTree}. All mutations must go through the cache: each one
+ * evicts only the entries whose range meets the part of the view the mutation
+ * could have changed, i.e. the mutated interval widened by the merge distance
+ * and by every segment it touches before and after the change. Entries are
+ * also indexed by range, so finding them costs a lookup plus one step per
+ * candidate instead of a scan of the whole cache.
+ * <p>
+ * {@link IntervalTree#remove(Interval)} rebuilds the whole view from the stored
+ * intervals, which can move segment boundaries next to deleted blocks that an
+ * earlier put left in place. The windows of those puts are therefore
+ * remembered, merged as they arrive, and invalidated again on the next remove.
+ * Once there are {@code capacity} windows, a new one is folded into its
+ * nearest neighbour.
+ */
+public class IntervalQueryCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Object NONE = new Object();
+
+    private final int capacity;
+    private final IntervalTree tree;
+    private final Map<Key, Object> entries;
+    private final NavigableSet<Key> byRange = new TreeSet<>();
+    // how many entries span each width, so the widest one bounds range lookups
+    private final NavigableMap<Long, Integer> spans = new TreeMap<>();
+    // start to end of disjoint windows that the next remove must invalidate
+    private final NavigableMap<Long, Long> pendingWindows = new TreeMap<>();
+
+    public IntervalQueryCache(IntervalTree tree) {
+	this(tree, DEFAULT_CAPACITY);
+    }
+
+    public IntervalQueryCache(IntervalTree tree, int capacity) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("capacity must be positive: " + capacity);
+	}
+	this.tree = tree;
+	this.capacity = capacity;
+	entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+		if (size() > capacity) {
+		    unindex(eldest.getKey());
+		    return true;
+		}
+		return false;
+	    }
+	};
+    }
+
+    public IntervalTree getTree() {
+	return tree;
+    }
+
+    public int size() {
+	return entries.size();
+    }
+
+    public void put(Interval interval) {
+	List<Interval> before = tree.getDisJointIntervals();
+	tree.put(interval);
+	long[] window = invalidate(interval, before);
+	if (tree.deletedBlockCount() > 0) {
+	    remember(window[0], window[1]);
+	}
+    }
+
+    public void remove(Interval interval) {
+	if (!tree.contains(interval)) {
+	    // the tree ignores the call, so the view and the pending windows stay as they are
+	    return;
+	}
+	List<Interval> before = tree.getDisJointIntervals();
+	tree.remove(interval);
+	invalidate(interval, before);
+	for (Map.Entry<Long, Long> window : pendingWindows.entrySet()) {
+	    invalidate(window.getKey(), window.getValue());
+	}
+	pendingWindows.clear();
+    }
+
+    public void delete(Interval interval) {
+	List<Interval> before = tree.getDisJointIntervals();
+	tree.delete(interval);
+	invalidate(interval, before);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Interval> getDisJointIntervals(int lo, int hi) {
+	return (List<Interval>) lookup(new Key(QueryType.RANGE, lo, hi));
+    }
+
+    public Interval getDisJointInterval(int point) {
+	Object cached = lookup(new Key(QueryType.POINT, point, point));
+	return cached == NONE ? null : (Interval) cached;
+    }
+
+    /**
+     * Returns the total length of the disjoint view clipped to {@code [lo, hi]}.
+     */
+    public long coverage(int lo, int hi) {
+	return (Long) lookup(new Key(QueryType.COVERAGE, lo, hi));
+    }
+
+    private Object lookup(Key key) {
+	Object cached = entries.get(key);
+	if (cached == null) {
+	    cached = compute(key);
+	    entries.put(key, cached);
+	    index(key);
+	}
+	assert cached.equals(compute(key)) : "stale " + key.type + " entry for [" + key.lo + "," + key.hi + "]";
+	return cached;
+    }
+
+    private Object compute(Key key) {
+	switch (key.type) {
+	case RANGE:
+	    return Collections.unmodifiableList(tree.getDisJointIntervals(key.lo, key.hi));
+	case POINT:
+	    Interval interval = tree.getDisJointInterval(key.lo);
+	    return interval == null ? NONE : new Interval(interval.start, interval.end);
+	default:
+	    long covered = 0;
+	    for (Interval segment : tree.getDisJointIntervals(key.lo, key.hi)) {
+		covered += Math.min(segment.end, key.hi) - Math.max(segment.start, key.lo);
+	    }
+	    return covered;
+	}
+    }
+
+    public void clear() {
+	entries.clear();
+	byRange.clear();
+	spans.clear();
+	pendingWindows.clear();
+    }
+
+    private void remember(long lo, long hi) {
+	Map.Entry<Long, Long> floor = pendingWindows.floorEntry(lo);
+	if (floor != null && floor.getValue() >= lo) {
+	    lo = floor.getKey();
+	    hi = Math.max(hi, floor.getValue());
+	    pendingWindows.remove(lo);
+	}
+	Map.Entry<Long, Long> next = pendingWindows.ceilingEntry(lo);
+	while (next != null && next.getKey() <= hi) {
+	    hi = Math.max(hi, next.getValue());
+	    pendingWindows.remove(next.getKey());
+	    next = pendingWindows.ceilingEntry(lo);
+	}
+	if (pendingWindows.size() >= capacity) {
+	    Map.Entry<Long, Long> lower = pendingWindows.lowerEntry(lo);
+	    Map.Entry<Long, Long> higher = pendingWindows.higherEntry(hi);
+	    if (higher == null || lower != null && lo - lower.getValue() <= higher.getKey() - hi) {
+		lo = lower.getKey();
+		pendingWindows.remove(lo);
+	    } else {
+		hi = higher.getValue();
+		pendingWindows.remove(higher.getKey());
+	    }
+	}
+	pendingWindows.put(lo, hi);
+    }
+
+    private long[] invalidate(Interval interval, List<Interval> before) {
+	long lo = (long) interval.start - Interval.MERGE_DISTANCE;
+	long hi = (long) interval.end + Interval.MERGE_DISTANCE;
+	List<Interval> touched = new ArrayList<>();
+	collectTouched(before, lo, hi, touched);
+	collectTouched(tree.getDisJointIntervals(), lo, hi, touched);
+	for (Interval segment : touched) {
+	    lo = Math.min(lo, segment.start);
+	    hi = Math.max(hi, segment.end);
+	}
+	invalidate(lo, hi);
+	return new long[] { lo, hi };
+    }
+
+    private void invalidate(long lo, long hi) {
+	if (spans.isEmpty()) {
+	    return;
+	}
+	// an entry can only overlap the window if it starts at most the widest span before it
+	long from = Math.max(lo - spans.lastKey(), Integer.MIN_VALUE);
+	long to = Math.min(hi, Integer.MAX_VALUE);
+	if (from > to) {
+	    return;
+	}
+	Iterator<Key> keys = byRange.subSet(Key.first((int) from), true, Key.last((int) to), true).iterator();
+	while (keys.hasNext()) {
+	    Key key = keys.next();
+	    if (key.hi >= lo) {
+		keys.remove();
+		removeSpan(key);
+		entries.remove(key);
+	    }
+	}
+    }
+
+    private void index(Key key) {
+	byRange.add(key);
+	spans.merge(key.span(), 1, Integer::sum);
+    }
+
+    private void unindex(Key key) {
+	byRange.remove(key);
+	removeSpan(key);
+    }
+
+    private void removeSpan(Key key) {
+	long span = key.span();
+	int count = spans.get(span);
+	if (count == 1) {
+	    spans.remove(span);
+	} else {
+	    spans.put(span, count - 1);
+	}
+    }
+
+    private static void collectTouched(List<Interval> view, long lo, long hi, List<Interval> touched) {
+	int from = IntervalTree.firstEndingAtOrAfter(view, (int) Math.max(lo, Integer.MIN_VALUE));
+	for (int i = from; i < view.size() && view.get(i).start <= hi; i++) {
+	    touched.add(view.get(i));
+	}
+    }
+
+    private enum QueryType {
+	RANGE, POINT, COVERAGE
+    }
+
+    /**
+     * Ordered by range start, then range end, then query type.
+     */
+    private static class Key implements Comparable<Key> {
+
+	final QueryType type;
+	final int lo;
+	final int hi;
+
+	Key(QueryType type, int lo, int hi) {
+	    this.type = type;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	static Key first(int lo) {
+	    return new Key(QueryType.RANGE, lo, Integer.MIN_VALUE);
+	}
+
+	static Key last(int lo) {
+	    return new Key(QueryType.COVERAGE, lo, Integer.MAX_VALUE);
+	}
+
+	long span() {
+	    return Math.max(0, (long) hi - lo);
+	}
+
+	@Override
+	public int compareTo(Key other) {
+	    if (lo != other.lo) {
+		return Integer.compare(lo, other.lo);
+	    }
+	    if (hi != other.hi) {
+		return Integer.compare(hi, other.hi);
+	    }
+	    return type.compareTo(other.type);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (obj instanceof Key) {
+		Key other = (Key) obj;
+		return type == other.type && lo == other.lo && hi == other.hi;
+	    } else {
+		return false;
+	    }
+	}
+
+	@Override
+	public int hashCode() {
+	    return (type.hashCode() * 31 + lo) * 31 + hi;
+	}
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.connecterra.helpers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Set algebra between disjoint interval views, such as the ones returned by
+ * {@link IntervalTree#getDisJointIntervals()}. Inputs must be sorted by start
+ * and non-overlapping. Every operation is a single lazy merge over its inputs:
+ * each input is iterated once, and the returned iterators produce results on
+ * demand without copying the inputs.
+ * <p>
+ * Union joins segments that overlap. It also joins segments of different
+ * inputs that lie within the merge distance of each other. Two segments of the
+ * same input are only joined when the other input bridges the gap between
+ * them, so a gap a tree keeps open for a deleted block stays open and
+ * {@code union(a, empty)} returns {@code a}. Difference follows
+ * {@link IntervalTree#delete(Interval)}: the remaining pieces keep the
+ * boundary points of the removed segment. Intersection and symmetric
+ * difference use the same boundary rule: segments that only touch share no
+ * piece, and symmetric difference joins pieces that touch, so its output is
+ * disjoint. Neither emits empty pieces.
+ */
+public class IntervalSetOperations {
+
+    private IntervalSetOperations() {
+
+    }
+
+    public static List<Interval> union(IntervalTree a, IntervalTree b) {
+	return toList(union(a.getDisJointIntervals(), b.getDisJointIntervals()));
+    }
+
+    public static List<Interval> intersection(IntervalTree a, IntervalTree b) {
+	return toList(intersection(a.getDisJointIntervals(), b.getDisJointIntervals()));
+    }
+
+    public static List<Interval> difference(IntervalTree a, IntervalTree b) {
+	return toList(difference(a.getDisJointIntervals(), b.getDisJointIntervals()));
+    }
+
+    public static List<Interval> symmetricDifference(IntervalTree a, IntervalTree b) {
+	return toList(symmetricDifference(a.getDisJointIntervals(), b.getDisJointIntervals()));
+    }
+
+    public static Iterator<Interval> union(Iterable<Interval> a, Iterable<Interval> b) {
+	Cursor left = new Cursor(a.iterator());
+	Cursor right = new Cursor(b.iterator());
+	return new MergeIterator() {
+	    @Override
+	    Interval computeNext() {
+		Interval next = lowerStart(left.peek(), right.peek());
+		if (next == null) {
+		    return null;
+		}
+		boolean fromLeft = next == left.peek();
+		(fromLeft ? left : right).next();
+		Interval merged = new Interval(next.start, next.end);
+		long leftEnd = fromLeft ? next.end : Long.MIN_VALUE;
+		long rightEnd = fromLeft ? Long.MIN_VALUE : next.end;
+		while ((next = lowerStart(left.peek(), right.peek())) != null) {
+		    fromLeft = next == left.peek();
+		    long otherEnd = fromLeft ? rightEnd : leftEnd;
+		    if (next.start > merged.end && next.start > otherEnd + Interval.MERGE_DISTANCE) {
+			break;
+		    }
+		    (fromLeft ? left : right).next();
+		    merged.end = Math.max(merged.end, next.end);
+		    if (fromLeft) {
+			leftEnd = Math.max(leftEnd, next.end);
+		    } else {
+			rightEnd = Math.max(rightEnd, next.end);
+		    }
+		}
+		return merged;
+	    }
+	};
+    }
+
+    public static Iterator<Interval> intersection(Iterable<Interval> a, Iterable<Interval> b) {
+	Cursor left = new Cursor(a.iterator());
+	Cursor right = new Cursor(b.iterator());
+	return new MergeIterator() {
+	    @Override
+	    Interval computeNext() {
+		while (left.peek() != null && right.peek() != null) {
+		    Interval x = left.peek();
+		    Interval y = right.peek();
+		    int start = Math.max(x.start, y.start);
+		    int end = Math.min(x.end, y.end);
+		    Interval overlap = start < end ? new Interval(start, end) : null;
+		    if (x.end < y.end) {
+			left.next();
+		    } else {
+			right.next();
+		    }
+		    if (overlap != null) {
+			return overlap;
+		    }
+		}
+		return null;
+	    }
+	};
+    }
+
+    public static Iterator<Interval> difference(Iterable<Interval> a, Iterable<Interval> b) {
+	return difference(a.iterator(), b.iterator());
+    }
+
+    public static Iterator<Interval> symmetricDifference(Iterable<Interval> a, Iterable<Interval> b) {
+	Edges left = new Edges(a.iterator());
+	Edges right = new Edges(b.iterator());
+	return new MergeIterator() {
+	    private boolean open;
+	    private int start;
+
+	    @Override
+	    Interval computeNext() {
+		while (left.hasEdge() || right.hasEdge()) {
+		    int x = !left.hasEdge() ? right.edge()
+			    : !right.hasEdge() ? left.edge() : Math.min(left.edge(), right.edge());
+		    // cross every edge at x before looking at the state, so pieces
+		    // that touch at x are joined
+		    while (left.hasEdge() && left.edge() == x) {
+			left.cross();
+		    }
+		    while (right.hasEdge() && right.edge() == x) {
+			right.cross();
+		    }
+		    boolean covered = left.inside != right.inside;
+		    if (covered && !open) {
+			open = true;
+			start = x;
+		    } else if (!covered && open) {
+			open = false;
+			if (x > start) {
+			    return new Interval(start, x);
+			}
+		    }
+		}
+		return null;
+	    }
+	};
+    }
+
+    private static Iterator<Interval> difference(Iterator<Interval> a, Iterator<Interval> b) {
+	Cursor left = new Cursor(a);
+	Cursor right = new Cursor(b);
+	return new MergeIterator() {
+	    private Interval current;
+
+	    @Override
+	    Interval computeNext() {
+		while (true) {
+		    if (current == null) {
+			if (left.peek() == null) {
+			    return null;
+			}
+			Interval next = left.next();
+			current = new Interval(next.start, next.end);
+		    }
+		    while (right.peek() != null && right.peek().end <= current.start) {
+			right.next();
+		    }
+		    Interval block = right.peek();
+		    if (block == null || block.start >= current.end) {
+			Interval result = current;
+			current = null;
+			return result;
+		    }
+		    Interval piece = current.start < block.start ? new Interval(current.start, block.start) : null;
+		    if (block.end < current.end) {
+			current = new Interval(block.end, current.end);
+		    } else {
+			current = null;
+		    }
+		    if (piece != null) {
+			return piece;
+		    }
+		}
+	    }
+	};
+    }
+
+    private static Interval lowerStart(Interval x, Interval y) {
+	if (x == null) {
+	    return y;
+	}
+	if (y == null) {
+	    return x;
+	}
+	return x.start <= y.start ? x : y;
+    }
+
+    private static List<Interval> toList(Iterator<Interval> iterator) {
+	List<Interval> result = new ArrayList<>();
+	iterator.forEachRemaining(result::add);
+	return result;
+    }
+
+    private static class Cursor {
+
+	private final Iterator<Interval> iterator;
+	private Interval head;
+
+	Cursor(Iterator<Interval> iterator) {
+	    this.iterator = iterator;
+	    head = iterator.hasNext() ? iterator.next() : null;
+	}
+
+	Interval peek() {
+	    return head;
+	}
+
+	Interval next() {
+	    Interval current = head;
+	    head = iterator.hasNext() ? iterator.next() : null;
+	    return current;
+	}
+    }
+
+    /**
+     * Walks the start and end points of a sorted disjoint input in order.
+     */
+    private static class Edges {
+
+	private final Cursor cursor;
+	boolean inside;
+
+	Edges(Iterator<Interval> iterator) {
+	    cursor = new Cursor(iterator);
+	}
+
+	boolean hasEdge() {
+	    return cursor.peek() != null;
+	}
+
+	int edge() {
+	    return inside ? cursor.peek().end : cursor.peek().start;
+	}
+
+	void cross() {
+	    if (inside) {
+		cursor.next();
+	    }
+	    inside = !inside;
+	}
+    }
+
+    private abstract static class MergeIterator implements Iterator<Interval> {
+
+	private Interval next;
+	private boolean computed;
+
+	abstract Interval computeNext();
+
+	@Override
+	public boolean hasNext() {
+	    if (!computed) {
+		next = computeNext();
+		computed = true;
+	    }
+	    return next != null;
+	}
+
+	@Override
+	public Interval next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    computed = false;
+	    return next;
+	}
+    }
+
+}
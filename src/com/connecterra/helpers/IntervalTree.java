@@ -1,13 +1,13 @@
 package com.connecterra.helpers;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
-import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 public class IntervalTree {
@@ -15,17 +15,77 @@ public class IntervalTree {
     private static final boolean RED = true;
     private static final boolean BLACK = false;
 
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 4096;
+
     private IntervalTreeNode root;
     private List<Interval> disjointIntervals;
     private TreeSet<Interval> deletedBlocks;
+    private final ForkJoinPool pool;
+    private final int sequentialThreshold;
 
     public IntervalTree() {
+	this(null, DEFAULT_SEQUENTIAL_THRESHOLD);
+    }
+
+    /**
+     * Creates a tree whose disjoint view is recomputed on the given pool once it
+     * grows beyond {@code sequentialThreshold} intervals. Smaller views are
+     * recomputed on the calling thread. A {@code null} pool selects a dedicated
+     * pool shared by all trees, so the common pool is never used.
+     */
+    public IntervalTree(ForkJoinPool pool, int sequentialThreshold) {
+	if (sequentialThreshold < 1) {
+	    throw new IllegalArgumentException("sequential threshold must be positive: " + sequentialThreshold);
+	}
+	this.pool = pool;
+	this.sequentialThreshold = sequentialThreshold;
 	disjointIntervals = new ArrayList<>();
 	deletedBlocks = new TreeSet<>();
     }
 
+    /**
+     * Returns a read-only view of the disjoint intervals. Every mutation builds
+     * a new list rather than changing the current one, so a returned list is a
+     * stable snapshot. Once it has been handed to another thread, that thread
+     * can read it without locking the tree.
+     */
     public List<Interval> getDisJointIntervals() {
-	return disjointIntervals;
+	return Collections.unmodifiableList(disjointIntervals);
+    }
+
+    public List<Interval> getDisJointIntervals(int lo, int hi) {
+	if (lo > hi) {
+	    throw new IllegalArgumentException("invalid range: " + lo + " > " + hi);
+	}
+	List<Interval> view = disjointIntervals;
+	List<Interval> result = new ArrayList<>();
+	for (int i = firstEndingAtOrAfter(view, lo); i < view.size() && view.get(i).start <= hi; i++) {
+	    result.add(view.get(i));
+	}
+	return result;
+    }
+
+    public Interval getDisJointInterval(int point) {
+	List<Interval> view = disjointIntervals;
+	int i = firstEndingAtOrAfter(view, point);
+	if (i < view.size() && view.get(i).start <= point) {
+	    return view.get(i);
+	}
+	return null;
+    }
+
+    static int firstEndingAtOrAfter(List<Interval> view, int point) {
+	int lo = 0;
+	int hi = view.size();
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (view.get(mid).end < point) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+	return lo;
     }
 
     private boolean isRed(IntervalTreeNode intervalNode) {
@@ -79,6 +139,28 @@ public class IntervalTree {
 	root.color = BLACK;
     }
 
+    /**
+     * Adds all intervals to the tree, leaving the same disjoint view as calling
+     * {@link #put(Interval)} for each of them. Without deleted blocks that view
+     * equals a rebuild from the stored intervals, so it is rebuilt once. Near a
+     * deleted block a rebuild would also merge coverage hidden by the block,
+     * so the intervals are then added one by one.
+     */
+    public void putAll(Collection<Interval> intervals) {
+	if (!deletedBlocks.isEmpty()) {
+	    intervals.forEach(this::put);
+	    return;
+	}
+	for (Interval interval : intervals) {
+	    if (interval == null) {
+		throw new IllegalArgumentException("interval is empty");
+	    }
+	    root = put(root, interval);
+	    root.color = BLACK;
+	}
+	updateDisjointIntervals();
+    }
+
     private IntervalTreeNode put(IntervalTreeNode intervalNode, Interval interval) {
 
 	if (intervalNode == null) {
@@ -114,10 +196,26 @@ public class IntervalTree {
     }
 
     private void updateDeletedBlocks(Interval interval) {
-	deletedBlocks = deletedBlocks.stream().filter(block -> !interval.contains(block)).flatMap(block -> {
-	    return block.exactOverlap(interval) ? splitInterval(block, interval).stream()
-		    : new ArrayList<>(Arrays.asList(block)).stream();
-	}).collect(Collectors.toCollection(TreeSet::new));
+	NavigableSet<Interval> overlapping = blocksIntersecting(interval);
+	if (overlapping.isEmpty()) {
+	    return;
+	}
+	List<Interval> remaining = overlapping.stream().filter(block -> !interval.contains(block))
+		.flatMap(block -> splitInterval(block, interval).stream()).collect(Collectors.toList());
+	overlapping.clear();
+	deletedBlocks.addAll(remaining);
+    }
+
+    /**
+     * Deleted blocks are kept sorted and pairwise disjoint, so the blocks
+     * touching an interval form one contiguous range of the set.
+     */
+    private NavigableSet<Interval> blocksIntersecting(Interval interval) {
+	Interval from = deletedBlocks.floor(new Interval(interval.start, Integer.MAX_VALUE));
+	if (from == null || from.end < interval.start) {
+	    from = new Interval(interval.start, Integer.MIN_VALUE);
+	}
+	return deletedBlocks.subSet(from, true, new Interval(interval.end, Integer.MAX_VALUE), true);
     }
 
     private List<Interval> insert(List<Interval> disjointIntervals, Interval newInterval) {
@@ -157,7 +255,8 @@ public class IntervalTree {
 		ans.add(disjointIntervals.get(i));
 
 		if (i < n && newInterval.after(disjointIntervals.get(i))
-			&& newInterval.before(disjointIntervals.get(i + 1))) {
+			&& newInterval.before(disjointIntervals.get(i + 1))
+			&& !newInterval.doOverlap(disjointIntervals.get(i + 1))) {
 		    ans.add(newInterval);
 		}
 
@@ -186,18 +285,81 @@ public class IntervalTree {
     }
 
     private List<Interval> deleteBlocksIfNeeded(List<Interval> intervals) {
-	return intervals.parallelStream().flatMap(interval -> {
-	    return splitIntervals(interval, deletedBlocks).stream();
-	}).collect(Collectors.toList());
+	if (deletedBlocks.isEmpty()) {
+	    return intervals instanceof ArrayList ? intervals : new ArrayList<>(intervals);
+	}
+	if (intervals.size() <= sequentialThreshold) {
+	    return deleteBlocksSequentially(intervals, 0, intervals.size());
+	}
+	ForkJoinPool target = pool != null ? pool : RecomputePoolHolder.POOL;
+	return target.invoke(new DeleteBlocksTask(intervals, 0, intervals.size()));
     }
 
-    private List<Interval> splitIntervals(Interval interval, Set<Interval> deletedBlocks) {
-	Deque<Interval> splitted = new ArrayDeque<>();
-	splitted.push(interval);
-	deletedBlocks.stream().filter(splitted.peek()::exactOverlap).forEachOrdered(block -> {
-	    splitted.addAll(splitInterval(splitted.pop(), block));
-	});
-	return new ArrayList<>(splitted);
+    private List<Interval> deleteBlocksSequentially(List<Interval> intervals, int from, int to) {
+	List<Interval> result = new ArrayList<>(to - from);
+	for (int i = from; i < to; i++) {
+	    result.addAll(splitIntervals(intervals.get(i)));
+	}
+	return result;
+    }
+
+    /**
+     * Splits the sorted disjoint view at interval boundaries, so every chunk
+     * covers its own coordinate range and the per-chunk results only need to be
+     * concatenated in order.
+     */
+    private class DeleteBlocksTask extends RecursiveTask<List<Interval>> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Interval> intervals;
+	private final int from;
+	private final int to;
+
+	DeleteBlocksTask(List<Interval> intervals, int from, int to) {
+	    this.intervals = intervals;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected List<Interval> compute() {
+	    if (to - from <= sequentialThreshold) {
+		return deleteBlocksSequentially(intervals, from, to);
+	    }
+	    int mid = (from + to) >>> 1;
+	    DeleteBlocksTask right = new DeleteBlocksTask(intervals, mid, to);
+	    right.fork();
+	    List<Interval> result = new DeleteBlocksTask(intervals, from, mid).compute();
+	    result.addAll(right.join());
+	    return result;
+	}
+    }
+
+    private static class RecomputePoolHolder {
+	static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private List<Interval> splitIntervals(Interval interval) {
+	List<Interval> splitted = new ArrayList<>();
+	Interval current = interval;
+	for (Interval block : blocksIntersecting(interval)) {
+	    if (block.end <= current.start) {
+		continue;
+	    }
+	    if (block.start >= current.end) {
+		break;
+	    }
+	    if (current.start < block.start) {
+		splitted.add(new Interval(current.start, block.start));
+	    }
+	    if (block.end >= current.end) {
+		return splitted;
+	    }
+	    current = new Interval(block.end, current.end);
+	}
+	splitted.add(current);
+	return splitted;
     }
 
     private List<Interval> splitInterval(Interval interval, Interval block) {
@@ -310,40 +472,136 @@ public class IntervalTree {
 	disjointIntervals = mergeOverlappingIntervals();
     }
 
+    /**
+     * Rebuilds the disjoint view from the stored intervals. Merging and block
+     * subtraction both run on primitive arrays; only the final segments are
+     * boxed. Beyond the sequential threshold the subtraction and boxing run in
+     * chunks on the recompute pool.
+     */
     private List<Interval> mergeOverlappingIntervals() {
-	List<Interval> mergedIntervals = new ArrayList<>();
-	if (this.root == null) {
-	    return mergedIntervals;
-	}
-	reverseOrder(this.root, mergedIntervals);
-	int index = 0;
-	for (int i = 0; i < mergedIntervals.size(); i++) {
-	    if (index != 0 && mergedIntervals.get(index - 1).doOverlap(mergedIntervals.get(i))) {
-		while (index != 0 && mergedIntervals.get(index - 1).doOverlap(mergedIntervals.get(i))) {
-		    Interval temp = new Interval();
-		    temp.end = Math.max(mergedIntervals.get(index - 1).end, mergedIntervals.get(i).end);
-		    temp.start = Math.min(mergedIntervals.get(index - 1).start, mergedIntervals.get(i).start);
-		    mergedIntervals.set(index - 1, temp);
-		    index--;
-		}
-	    } else {
-		mergedIntervals.add(index, mergedIntervals.get(i));
+	int n = size();
+	int[] starts = new int[n];
+	int[] ends = new int[n];
+	int count = mergeStoredIntervals(starts, ends);
+	int m = deletedBlocks.size();
+	if (m == 0) {
+	    return toIntervals(starts, ends, count);
+	}
+	int[] blockStarts = new int[m];
+	int[] blockEnds = new int[m];
+	int j = 0;
+	for (Interval block : deletedBlocks) {
+	    blockStarts[j] = block.start;
+	    blockEnds[j++] = block.end;
+	}
+	SubtractBlocksTask task = new SubtractBlocksTask(starts, ends, blockStarts, blockEnds, 0, count);
+	if (count <= sequentialThreshold) {
+	    return task.compute();
+	}
+	ForkJoinPool target = pool != null ? pool : RecomputePoolHolder.POOL;
+	return target.invoke(task);
+    }
+
+    /**
+     * Subtracts the deleted blocks from the merged segments in {@code [from, to)}.
+     * Like {@link DeleteBlocksTask} it splits at segment indices; each chunk
+     * only looks at the blocks that can reach its segments, and the chunk
+     * results are concatenated in order.
+     */
+    private class SubtractBlocksTask extends RecursiveTask<List<Interval>> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int[] starts;
+	private final int[] ends;
+	private final int[] blockStarts;
+	private final int[] blockEnds;
+	private final int from;
+	private final int to;
+
+	SubtractBlocksTask(int[] starts, int[] ends, int[] blockStarts, int[] blockEnds, int from, int to) {
+	    this.starts = starts;
+	    this.ends = ends;
+	    this.blockStarts = blockStarts;
+	    this.blockEnds = blockEnds;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected List<Interval> compute() {
+	    if (to - from <= sequentialThreshold) {
+		return subtractSequentially();
 	    }
+	    int mid = (from + to) >>> 1;
+	    SubtractBlocksTask right = new SubtractBlocksTask(starts, ends, blockStarts, blockEnds, mid, to);
+	    right.fork();
+	    List<Interval> result = new SubtractBlocksTask(starts, ends, blockStarts, blockEnds, from, mid).compute();
+	    result.addAll(right.join());
+	    return result;
+	}
 
-	    index++;
+	private List<Interval> subtractSequentially() {
+	    if (from == to) {
+		return new ArrayList<>();
+	    }
+	    // blocks are disjoint and sorted, so both their starts and ends ascend
+	    int blockFrom = firstAbove(blockEnds, starts[from]);
+	    int blockTo = firstAbove(blockStarts, ends[to - 1] - 1);
+	    int capacity = (to - from) + Math.max(0, blockTo - blockFrom);
+	    int[] outStarts = new int[capacity];
+	    int[] outEnds = new int[capacity];
+	    int count = IntervalArrays.subtract(starts, ends, from, to, blockStarts, blockEnds, blockFrom, blockTo,
+		    outStarts, outEnds);
+	    return toIntervals(outStarts, outEnds, count);
+	}
+    }
+
+    /**
+     * Returns the index of the first value in the ascending array that is
+     * greater than {@code value}, or the array length if there is none.
+     */
+    private static int firstAbove(int[] values, int value) {
+	int lo = 0;
+	int hi = values.length;
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (values[mid] <= value) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
 	}
-	mergedIntervals = mergedIntervals.subList(0, index);
-	Collections.reverse(mergedIntervals);
-	return deleteBlocksIfNeeded(mergedIntervals);
+	return lo;
+    }
+
+    private List<Interval> mergeStoredIntervals() {
+	int[] starts = new int[size()];
+	int[] ends = new int[size()];
+	return toIntervals(starts, ends, mergeStoredIntervals(starts, ends));
     }
 
-    private void reverseOrder(IntervalTreeNode r, List<Interval> reverse) {
+    private int mergeStoredIntervals(int[] starts, int[] ends) {
+	int n = inorder(root, starts, ends, 0);
+	return IntervalArrays.merge(starts, ends, n, starts, ends);
+    }
+
+    private int inorder(IntervalTreeNode r, int[] starts, int[] ends, int index) {
 	if (r == null) {
-	    return;
+	    return index;
+	}
+	index = inorder(r.left, starts, ends, index);
+	starts[index] = r.interval.start;
+	ends[index] = r.interval.end;
+	return inorder(r.right, starts, ends, index + 1);
+    }
+
+    private static List<Interval> toIntervals(int[] starts, int[] ends, int count) {
+	List<Interval> intervals = new ArrayList<>(count);
+	for (int i = 0; i < count; i++) {
+	    intervals.add(new Interval(starts[i], ends[i]));
 	}
-	reverseOrder(r.right, reverse);
-	reverse.add(r.interval);
-	reverseOrder(r.left, reverse);
+	return intervals;
     }
 
     private IntervalTreeNode remove(IntervalTreeNode r, Interval i) {
@@ -666,8 +924,52 @@ public class IntervalTree {
     }
 
     public void delete(Interval interval) {
-	deletedBlocks.add(interval);
-	disjointIntervals = deleteBlocksIfNeeded(this.disjointIntervals);
+	if (interval == null) {
+	    throw new IllegalArgumentException("argument to delete() is null");
+	}
+	NavigableSet<Interval> overlapping = blocksIntersecting(interval);
+	Interval block = new Interval(interval.start, interval.end);
+	for (Interval existing : overlapping) {
+	    block.start = Math.min(block.start, existing.start);
+	    block.end = Math.max(block.end, existing.end);
+	}
+	overlapping.clear();
+	deletedBlocks.add(block);
+
+	List<Interval> view = disjointIntervals;
+	int from = firstEndingAtOrAfter(view, block.start);
+	int to = from;
+	List<Interval> updated = new ArrayList<>(view.size() + 1);
+	updated.addAll(view.subList(0, from));
+	for (; to < view.size() && view.get(to).start <= block.end; to++) {
+	    updated.addAll(splitIntervals(view.get(to)));
+	}
+	updated.addAll(view.subList(to, view.size()));
+	disjointIntervals = updated;
+    }
+
+    /**
+     * Drops deleted blocks that no longer intersect the merged coverage of the
+     * stored intervals. A dropped block no longer splits intervals added later
+     * into the gap it covered.
+     */
+    public void compactDeletedBlocks() {
+	List<Interval> coverage = mergeStoredIntervals();
+	TreeSet<Interval> compacted = new TreeSet<>();
+	int i = 0;
+	for (Interval block : deletedBlocks) {
+	    while (i < coverage.size() && coverage.get(i).end < block.start) {
+		i++;
+	    }
+	    if (i < coverage.size() && coverage.get(i).intersects(block)) {
+		compacted.add(block);
+	    }
+	}
+	deletedBlocks = compacted;
+    }
+
+    public int deletedBlockCount() {
+	return deletedBlocks.size();
     }
 
 }
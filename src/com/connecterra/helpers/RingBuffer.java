@@ -0,0 +1,89 @@
+package com.connecterra.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer queue backed by a power-of-two array.
+ * {@link #put(Object)} blocks while the buffer is full and {@link #take()}
+ * blocks while it is empty, which gives the producer backpressure.
+ */
+public class RingBuffer<T> {
+
+    private static final int SPIN_TRIES = 100;
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+	if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+	    throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+	}
+	slots = new Object[capacity];
+	mask = capacity - 1;
+    }
+
+    public int capacity() {
+	return slots.length;
+    }
+
+    public boolean offer(T value) {
+	if (value == null) {
+	    throw new IllegalArgumentException("value is null");
+	}
+	long t = tail.get();
+	if (t - head.get() == slots.length) {
+	    return false;
+	}
+	slots[(int) t & mask] = value;
+	tail.lazySet(t + 1);
+	return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T poll() {
+	long h = head.get();
+	if (h == tail.get()) {
+	    return null;
+	}
+	int index = (int) h & mask;
+	T value = (T) slots[index];
+	slots[index] = null;
+	head.lazySet(h + 1);
+	return value;
+    }
+
+    public void put(T value) throws InterruptedException {
+	int tries = 0;
+	while (!offer(value)) {
+	    tries = idle(tries);
+	}
+    }
+
+    public T take() throws InterruptedException {
+	int tries = 0;
+	T value;
+	while ((value = poll()) == null) {
+	    tries = idle(tries);
+	}
+	return value;
+    }
+
+    private int idle(int tries) throws InterruptedException {
+	if (Thread.interrupted()) {
+	    throw new InterruptedException();
+	}
+	if (tries < SPIN_TRIES) {
+	    return tries + 1;
+	}
+	if (tries < 2 * SPIN_TRIES) {
+	    Thread.yield();
+	    return tries + 1;
+	}
+	LockSupport.parkNanos(50_000L);
+	return tries;
+    }
+
+}
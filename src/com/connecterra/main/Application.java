@@ -7,6 +7,7 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Stream;
 
+import com.connecterra.helpers.AppliedEventIds;
 import com.connecterra.helpers.Interval;
 import com.connecterra.helpers.IntervalTree;
 import com.connecterra.helpers.IntervalTreeNode;
@@ -14,29 +15,47 @@ import com.connecterra.helpers.IntervalTreeNode;
 public class Application {
 
     private static IntervalTree tree = new IntervalTree();
+    private static AppliedEventIds appliedIds = new AppliedEventIds();
 
     private static void process(String input) {
 
 	String[] args = input.split(" ");
+	if (!appliedIds.add(Long.parseLong(args[0]))) {
+	    return;
+	}
 	int start = Integer.parseInt(args[1]);
 	int end = Integer.parseInt(args[2]);
 	String action = args[3];
 
+	apply(tree, action, start, end);
+
+	print(tree.getDisJointIntervals());
+	System.out.print('\n');
+
+    }
+
+    /**
+     * Applies one event to the tree. Deleted blocks are compacted after every
+     * removal, which already rebuilds the whole view, and after a deletion once
+     * blocks outnumber the stored intervals, since a delete also copies the
+     * view. A compacted block no longer hides intervals added later in its gap.
+     */
+    static void apply(IntervalTree tree, String action, int start, int end) {
 	switch (action) {
 	case "ADDED":
 	    tree.put(new Interval(start, end));
 	    break;
 	case "REMOVED":
 	    tree.remove(new Interval(start, end));
+	    tree.compactDeletedBlocks();
 	    break;
 	case "DELETED":
 	    tree.delete(new Interval(start, end));
+	    if (tree.deletedBlockCount() > tree.size()) {
+		tree.compactDeletedBlocks();
+	    }
 	    break;
 	}
-
-	print(tree.getDisJointIntervals());
-	System.out.print('\n');
-
     }
 
     private static void print(List<Interval> list) {
@@ -44,6 +63,12 @@ public class Application {
 	System.out.print('\n');
     }
 
+    static void format(List<Interval> list, StringBuilder sb) {
+	list.forEach(sb::append);
+	sb.append('\n');
+	sb.append('\n');
+    }
+
     private static void inorder(IntervalTreeNode r) {
 	if (r == null) {
 	    return;
@@ -56,6 +81,25 @@ public class Application {
     public static void main(String[] args) {
 	Path currentDir = Paths.get("");
 	String fileName = currentDir.toAbsolutePath() + "\\resources\\intervals.txt";
+	if (args.length > 1 && "--serve".equals(args[0])) {
+	    try {
+		QueryServer server = new QueryServer(tree, Integer.parseInt(args[1])).start();
+		System.out.println("Serving interval queries on localhost:" + server.getPort());
+	    } catch (IOException e) {
+		e.printStackTrace();
+	    }
+	    return;
+	}
+	if (args.length > 0 && "--pipelined".equals(args[0])) {
+	    try {
+		new IngestionPipeline(tree, appliedIds, System.out).run(Paths.get(fileName));
+	    } catch (IOException e) {
+		e.printStackTrace();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    return;
+	}
 	try (Stream<String> stream = Files.lines(Paths.get(fileName))) {
 	    stream.forEach(Application::process);
 	} catch (IOException e) {
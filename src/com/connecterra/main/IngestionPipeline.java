@@ -0,0 +1,158 @@
+package com.connecterra.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.connecterra.helpers.AppliedEventIds;
+import com.connecterra.helpers.IntervalTree;
+import com.connecterra.helpers.RingBuffer;
+
+/**
+ * Replays an event file through four threads - read, parse, apply and print -
+ * connected by single-producer/single-consumer ring buffers. A fixed pool of
+ * {@link IntervalEvent} slots circulates through the stages, so a slow stage
+ * stalls its producers instead of letting work pile up.
+ */
+public class IngestionPipeline {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final IntervalTree tree;
+    private final AppliedEventIds appliedIds;
+    private final PrintStream out;
+    private final RingBuffer<IntervalEvent> free;
+    private final RingBuffer<IntervalEvent> read;
+    private final RingBuffer<IntervalEvent> parsed;
+    private final RingBuffer<IntervalEvent> applied;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Thread> stages = new ArrayList<>();
+
+    public IngestionPipeline(IntervalTree tree, PrintStream out) {
+	this(tree, new AppliedEventIds(), out, DEFAULT_CAPACITY);
+    }
+
+    public IngestionPipeline(IntervalTree tree, AppliedEventIds appliedIds, PrintStream out) {
+	this(tree, appliedIds, out, DEFAULT_CAPACITY);
+    }
+
+    public IngestionPipeline(IntervalTree tree, AppliedEventIds appliedIds, PrintStream out, int capacity) {
+	this.tree = tree;
+	this.appliedIds = appliedIds;
+	this.out = out;
+	free = new RingBuffer<>(capacity);
+	read = new RingBuffer<>(capacity);
+	parsed = new RingBuffer<>(capacity);
+	applied = new RingBuffer<>(capacity);
+	for (int i = 0; i < capacity; i++) {
+	    free.offer(new IntervalEvent());
+	}
+    }
+
+    public void run(Path file) throws IOException, InterruptedException {
+	stage("interval-reader", () -> readStage(file));
+	stage("interval-parser", this::parseStage);
+	stage("interval-applier", this::applyStage);
+	stage("interval-printer", this::printStage);
+	stages.forEach(Thread::start);
+	for (Thread stage : stages) {
+	    stage.join();
+	}
+	Throwable cause = failure.get();
+	if (cause instanceof IOException) {
+	    throw (IOException) cause;
+	}
+	if (cause != null) {
+	    throw new IOException("ingestion pipeline failed", cause);
+	}
+    }
+
+    private void stage(String name, Stage stage) {
+	Thread thread = new Thread(() -> {
+	    try {
+		stage.run();
+	    } catch (InterruptedException e) {
+		failure.compareAndSet(null, e);
+	    } catch (Exception e) {
+		failure.compareAndSet(null, e);
+		stages.forEach(Thread::interrupt);
+	    }
+	}, name);
+	stages.add(thread);
+    }
+
+    private void readStage(Path file) throws IOException, InterruptedException {
+	try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		IntervalEvent event = free.take();
+		event.line = line;
+		read.put(event);
+	    }
+	}
+	IntervalEvent event = free.take();
+	event.last = true;
+	read.put(event);
+    }
+
+    private void parseStage() throws InterruptedException {
+	IntervalEvent event;
+	do {
+	    event = read.take();
+	    if (!event.last) {
+		String[] args = event.line.split(" ");
+		event.id = Long.parseLong(args[0]);
+		event.start = Integer.parseInt(args[1]);
+		event.end = Integer.parseInt(args[2]);
+		event.action = args[3];
+	    }
+	    parsed.put(event);
+	} while (!event.last);
+    }
+
+    private void applyStage() throws InterruptedException {
+	IntervalEvent event;
+	do {
+	    event = parsed.take();
+	    if (!event.last && appliedIds.add(event.id)) {
+		Application.apply(tree, event.action, event.start, event.end);
+		// a snapshot, see IntervalTree.getDisJointIntervals()
+		event.disjointIntervals = tree.getDisJointIntervals();
+	    }
+	    applied.put(event);
+	} while (!event.last);
+    }
+
+    private void printStage() throws InterruptedException {
+	StringBuilder sb = new StringBuilder();
+	IntervalEvent event;
+	do {
+	    event = applied.take();
+	    boolean last = event.last;
+	    if (event.disjointIntervals != null) {
+		Application.format(event.disjointIntervals, sb);
+	    }
+	    event.clear();
+	    free.put(event);
+	    if (last || sb.length() >= 8192) {
+		out.print(sb);
+		sb.setLength(0);
+	    }
+	    if (last) {
+		out.flush();
+		return;
+	    }
+	} while (true);
+    }
+
+    private interface Stage {
+	void run() throws Exception;
+    }
+
+}
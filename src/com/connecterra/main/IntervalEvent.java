@@ -0,0 +1,28 @@
+package com.connecterra.main;
+
+import java.util.List;
+
+import com.connecterra.helpers.Interval;
+
+/**
+ * Preallocated slot handed from stage to stage by {@link IngestionPipeline}.
+ * Each stage fills in the fields it owns; the slot is recycled once printed.
+ */
+class IntervalEvent {
+
+    String line;
+    long id;
+    int start;
+    int end;
+    String action;
+    List<Interval> disjointIntervals;
+    boolean last;
+
+    void clear() {
+	line = null;
+	action = null;
+	disjointIntervals = null;
+	last = false;
+    }
+
+}
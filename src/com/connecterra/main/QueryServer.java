@@ -0,0 +1,236 @@
+package com.connecterra.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.connecterra.helpers.Interval;
+import com.connecterra.helpers.IntervalTree;
+
+/**
+ * Hosts an {@link IntervalTree} on a loopback TCP port using a line based
+ * protocol. Each request is one line and gets exactly one response line:
+ *
+ * <pre>
+ * ADDED start end | REMOVED start end | DELETED start end   -&gt; OK
+ * DISJOINT                                                 -&gt; [s,e][s,e]...
+ * RANGE lo hi                                              -&gt; [s,e][s,e]...
+ * POINT p                                                  -&gt; [s,e] or NONE
+ * </pre>
+ *
+ * Malformed requests are answered with {@code ERR <reason>}. Clients may
+ * pipeline requests; responses are flushed once no more input is buffered.
+ * Consecutive pipelined mutations of a connection are applied as one batch
+ * under a single write lock acquisition. Connections run on virtual threads
+ * when the runtime provides them.
+ */
+public class QueryServer implements Closeable {
+
+    private static final int MAX_BATCH = 256;
+
+    private final IntervalTree tree;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    public QueryServer(IntervalTree tree, int port) throws IOException {
+	this.tree = tree;
+	serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+	connections = newConnectionExecutor();
+	acceptor = new Thread(this::acceptLoop, "interval-query-acceptor");
+    }
+
+    public int getPort() {
+	return serverSocket.getLocalPort();
+    }
+
+    public QueryServer start() {
+	acceptor.start();
+	return this;
+    }
+
+    private static ExecutorService newConnectionExecutor() {
+	try {
+	    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	} catch (ReflectiveOperationException e) {
+	    return Executors.newCachedThreadPool();
+	}
+    }
+
+    private void acceptLoop() {
+	while (!serverSocket.isClosed()) {
+	    try {
+		Socket socket = serverSocket.accept();
+		connections.execute(() -> serve(socket));
+	    } catch (SocketException e) {
+		return;
+	    } catch (IOException e) {
+		e.printStackTrace();
+	    }
+	}
+    }
+
+    private void serve(Socket socket) {
+	try (Socket s = socket;
+		BufferedReader in = new BufferedReader(
+			new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+		Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+	    clients.add(s);
+	    s.setTcpNoDelay(true);
+	    StringBuilder sb = new StringBuilder();
+	    List<IntervalEvent> batch = new ArrayList<>();
+	    String line;
+	    while ((line = in.readLine()) != null) {
+		String[] args = line.trim().split(" +");
+		sb.setLength(0);
+		if (isMutation(args[0])) {
+		    try {
+			batch.add(parseMutation(args));
+		    } catch (RuntimeException e) {
+			writeAll(batch, out);
+			error(e, sb);
+		    }
+		} else {
+		    writeAll(batch, out);
+		    handle(args, sb);
+		}
+		if (sb.length() > 0) {
+		    out.append(sb).append('\n');
+		}
+		boolean drained = !in.ready();
+		if (drained || batch.size() >= MAX_BATCH) {
+		    writeAll(batch, out);
+		}
+		if (drained) {
+		    out.flush();
+		}
+	    }
+	    writeAll(batch, out);
+	} catch (IOException e) {
+	    // client went away; nothing to report back
+	} finally {
+	    clients.remove(socket);
+	}
+    }
+
+    private static boolean isMutation(String command) {
+	return "ADDED".equals(command) || "REMOVED".equals(command) || "DELETED".equals(command);
+    }
+
+    private static IntervalEvent parseMutation(String[] args) {
+	IntervalEvent event = new IntervalEvent();
+	event.action = args[0];
+	event.start = Integer.parseInt(args[1]);
+	event.end = Integer.parseInt(args[2]);
+	return event;
+    }
+
+    /**
+     * Applies the queued mutations under one write lock acquisition and answers
+     * each of them, in order, before any later response.
+     */
+    private void writeAll(List<IntervalEvent> batch, Writer out) throws IOException {
+	if (batch.isEmpty()) {
+	    return;
+	}
+	lock.writeLock().lock();
+	try {
+	    for (IntervalEvent event : batch) {
+		Application.apply(tree, event.action, event.start, event.end);
+	    }
+	} finally {
+	    lock.writeLock().unlock();
+	}
+	for (int i = 0; i < batch.size(); i++) {
+	    out.append("OK\n");
+	}
+	batch.clear();
+    }
+
+    void handle(String[] args, StringBuilder sb) {
+	try {
+	    switch (args[0]) {
+	    case "DISJOINT":
+		append(read(() -> tree.getDisJointIntervals()), sb);
+		break;
+	    case "RANGE":
+		int lo = Integer.parseInt(args[1]);
+		int hi = Integer.parseInt(args[2]);
+		append(read(() -> tree.getDisJointIntervals(lo, hi)), sb);
+		break;
+	    case "POINT":
+		int point = Integer.parseInt(args[1]);
+		Interval interval = read(() -> tree.getDisJointInterval(point));
+		sb.append(interval == null ? "NONE" : interval.toString());
+		break;
+	    default:
+		sb.append("ERR unknown command: ").append(args[0]);
+	    }
+	} catch (RuntimeException e) {
+	    error(e, sb);
+	}
+    }
+
+    private static void error(RuntimeException e, StringBuilder sb) {
+	if (e instanceof ArrayIndexOutOfBoundsException) {
+	    sb.append("ERR missing argument");
+	} else if (e instanceof IllegalArgumentException) {
+	    sb.append("ERR ").append(e.getMessage());
+	} else {
+	    throw e;
+	}
+    }
+
+    private <T> T read(Query<T> query) {
+	lock.readLock().lock();
+	try {
+	    return query.run();
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    private static void append(List<Interval> list, StringBuilder sb) {
+	list.forEach(sb::append);
+    }
+
+    @Override
+    public void close() throws IOException {
+	serverSocket.close();
+	for (Socket client : clients) {
+	    client.close();
+	}
+	connections.shutdown();
+	try {
+	    connections.awaitTermination(5, TimeUnit.SECONDS);
+	    acceptor.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    private interface Query<T> {
+	T run();
+    }
+
+}